@@ -0,0 +1,160 @@
+package com.mikerusoft.example.java8;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.Multisets;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Base class for read-only {@link Multimap} views. Everything is derived from {@link #asMap()},
+ * which should return unmodifiable, non-empty value collections. All mutators throw
+ * {@link UnsupportedOperationException}.
+ */
+abstract class AbstractReadOnlyMultimap<K, V> implements Multimap<K, V> {
+
+    @Override
+    public abstract Map<K, Collection<V>> asMap();
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (Collection<V> values : asMap().values())
+            size += values.size();
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return asMap().isEmpty();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return asMap().containsKey(key);
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        for (Collection<V> values : asMap().values()) {
+            if (values.contains(value))
+                return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean containsEntry(Object key, Object value) {
+        Collection<V> values = asMap().get(key);
+        return values != null && values.contains(value);
+    }
+
+    @Override
+    public Collection<V> get(K key) {
+        Collection<V> values = asMap().get(key);
+        return values == null ? Collections.emptyList() : values;
+    }
+
+    @Override
+    public Set<K> keySet() {
+        return asMap().keySet();
+    }
+
+    @Override
+    public Multiset<K> keys() {
+        Multiset<K> keys = HashMultiset.create();
+        asMap().forEach((key, values) -> keys.add(key, values.size()));
+        return Multisets.unmodifiableMultiset(keys);
+    }
+
+    @Override
+    public Collection<V> values() {
+        return new AbstractCollection<V>() {
+            @Override
+            public Iterator<V> iterator() {
+                return Iterators.concat(Iterators.transform(asMap().values().iterator(), Collection::iterator));
+            }
+
+            @Override
+            public int size() {
+                return AbstractReadOnlyMultimap.this.size();
+            }
+        };
+    }
+
+    @Override
+    public Collection<Map.Entry<K, V>> entries() {
+        return new AbstractCollection<Map.Entry<K, V>>() {
+            @Override
+            public Iterator<Map.Entry<K, V>> iterator() {
+                return Iterators.concat(Iterators.transform(asMap().entrySet().iterator(),
+                        e -> Iterators.transform(e.getValue().iterator(), v -> Maps.immutableEntry(e.getKey(), v))));
+            }
+
+            @Override
+            public int size() {
+                return AbstractReadOnlyMultimap.this.size();
+            }
+        };
+    }
+
+    @Override
+    public boolean put(K key, V value) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean putAll(K key, Iterable<? extends V> values) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean putAll(Multimap<? extends K, ? extends V> multimap) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Collection<V> replaceValues(K key, Iterable<? extends V> values) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Collection<V> removeAll(Object key) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Multimap)) return false;
+        return asMap().equals(((Multimap<?, ?>) o).asMap());
+    }
+
+    @Override
+    public int hashCode() {
+        return asMap().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return asMap().toString();
+    }
+}
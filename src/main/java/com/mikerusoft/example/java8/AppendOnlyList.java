@@ -0,0 +1,79 @@
+package com.mikerusoft.example.java8;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+/**
+ * Persistent read-only list, which new versions are created only by appending. Versions share one array:
+ * appending to the latest version writes into the free tail of the array in place, appending to an older one
+ * (the array already has elements past its size) copies it. So appending to the latest version costs amortized O(1)
+ * and never affects elements of older versions.
+ *
+ * @param <E> the type of elements
+ */
+final class AppendOnlyList<E> extends AbstractList<E> implements RandomAccess {
+
+    private static final AppendOnlyList<?> EMPTY = new AppendOnlyList<>(new Storage(new Object[0], 0), 0);
+
+    private static final class Storage {
+        private final Object[] elements;
+        private int length; // number of elements written into the array by all versions
+
+        Storage(Object[] elements, int length) {
+            this.elements = elements;
+            this.length = length;
+        }
+    }
+
+    private final Storage storage;
+    private final int size;
+
+    private AppendOnlyList(Storage storage, int size) {
+        this.storage = storage;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <E> AppendOnlyList<E> of() {
+        return (AppendOnlyList<E>) EMPTY;
+    }
+
+    AppendOnlyList<E> append(E element) {
+        Storage target = writable(1);
+        target.elements[size] = element;
+        target.length = size + 1;
+        return new AppendOnlyList<>(target, size + 1);
+    }
+
+    AppendOnlyList<E> appendAll(Collection<? extends E> elements) {
+        Object[] added = elements.toArray();
+        if (added.length == 0)
+            return this;
+        Storage target = writable(added.length);
+        System.arraycopy(added, 0, target.elements, size, added.length);
+        target.length = size + added.length;
+        return new AppendOnlyList<>(target, size + added.length);
+    }
+
+    private Storage writable(int count) {
+        if (storage.length == size && storage.elements.length - size >= count)
+            return storage;
+        Object[] elements = new Object[Math.max(size + count, Math.max(4, size * 2))];
+        System.arraycopy(storage.elements, 0, elements, 0, size);
+        return new Storage(elements, size);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        return (E) storage.elements[index];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+}
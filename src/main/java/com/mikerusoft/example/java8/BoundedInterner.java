@@ -0,0 +1,32 @@
+package com.mikerusoft.example.java8;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Interner;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Concurrent {@link Interner} which remembers at most {@code maximumSize} canonical instances
+ * and evicts the least recently used ones. Evicted instances aren't deduplicated anymore, but
+ * stay valid, so the interner never grows beyond its bound even for unbounded streams.
+ */
+public final class BoundedInterner<E> implements Interner<E> {
+
+    public static <E> BoundedInterner<E> create(long maximumSize) {
+        return new BoundedInterner<>(maximumSize);
+    }
+
+    private final ConcurrentMap<E, E> canonical;
+
+    private BoundedInterner(long maximumSize) {
+        this.canonical = CacheBuilder.newBuilder().maximumSize(maximumSize).<E, E>build().asMap();
+    }
+
+    @Override
+    public E intern(E sample) {
+        Objects.requireNonNull(sample);
+        E existing = canonical.putIfAbsent(sample, sample);
+        return existing == null ? sample : existing;
+    }
+}
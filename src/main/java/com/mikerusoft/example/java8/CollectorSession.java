@@ -0,0 +1,94 @@
+package com.mikerusoft.example.java8;
+
+import java.util.Objects;
+import java.util.stream.Collector;
+
+/**
+ * Incremental collect: keeps the result of a collector open, so batches may be added as they arrive
+ * instead of re-collecting the whole history on every refresh.
+ * <p>
+ * The state is a {@link PersistentHashTrie} from key to the value collected for it (e.g. values of a multimap key
+ * in an {@link AppendOnlyList}). Every version of the state is immutable: a batch copies only the trie paths
+ * to the keys it touches and appends to per-key values in place of their shared arrays, all the rest is shared
+ * with previous versions. So a refresh ({@code accept(batch)} + {@code snapshot()}) costs O(batch * log32(keys))
+ * regardless of the number of keys, hot keys included, and {@link #merge(CollectorSession)} costs O(other session).
+ * <p>
+ * {@link #accept(Iterable)} and {@link #merge(CollectorSession)} are atomic: the new version is built aside and
+ * replaces the current one only on success, so if a call fails (e.g. duplicate key or exception of key mapper),
+ * the session stays as it was before the call and remains usable.
+ * <p>
+ * Supported collectors: {@link Collectors#toMultimap(java.util.function.Function, java.util.function.Function)},
+ * {@link Collectors#toConcurrentSet()}, {@link Collectors#toShardedMultimap(java.util.function.Function, java.util.function.Function, int)}
+ * and {@link Collectors#toShardedMapWithNullValues(java.util.function.Function, java.util.function.Function, int)}.
+ * Snapshots are read-only views, even if the collector itself produces mutable results.
+ * <p>
+ * Not thread safe.
+ *
+ * @param <T> the type of elements to be collected
+ * @param <R> the type of the result
+ */
+public final class CollectorSession<T, R> {
+
+    /**
+     * @throws IllegalArgumentException if the collector doesn't support incremental sessions
+     */
+    public static <T, R> CollectorSession<T, R> open(Collector<T, ?, R> collector) {
+        Objects.requireNonNull(collector);
+        if (!(collector instanceof IncrementalCollector))
+            throw new IllegalArgumentException("Collector doesn't support incremental sessions: " + collector.getClass().getName());
+        @SuppressWarnings("unchecked")
+        IncrementalCollector<T, ?, ?, R> incremental = (IncrementalCollector<T, ?, ?, R>) collector;
+        return openIncremental(incremental);
+    }
+
+    static <T, R> CollectorSession<T, R> openIncremental(IncrementalCollector<T, ?, ?, R> collector) {
+        @SuppressWarnings("unchecked")
+        IncrementalCollector<T, Object, Object, R> c = (IncrementalCollector<T, Object, Object, R>) collector;
+        return new CollectorSession<>(c);
+    }
+
+    private final IncrementalCollector<T, Object, Object, R> collector;
+    private PersistentHashTrie<Object, Object> state = PersistentHashTrie.empty();
+
+    private CollectorSession(IncrementalCollector<T, Object, Object, R> collector) {
+        this.collector = collector;
+    }
+
+    /**
+     * Adds all elements of the batch. If the call fails, none of them is added.
+     */
+    public CollectorSession<T, R> accept(Iterable<? extends T> batch) {
+        Objects.requireNonNull(batch);
+        PersistentHashTrie.Editor<Object, Object> editor = state.edit();
+        for (T element : batch)
+            collector.accumulate(editor, element);
+        state = editor.persistent();
+        return this;
+    }
+
+    /**
+     * @return read-only result of all batches accepted so far. It isn't affected by the following
+     * {@link #accept(Iterable)} or {@link #merge(CollectorSession)} calls.
+     */
+    public R snapshot() {
+        return collector.snapshot(state);
+    }
+
+    /**
+     * Adds everything accepted by {@code other} session into this one. {@code other} session isn't modified.
+     * If the call fails, nothing is added.
+     *
+     * @throws IllegalArgumentException if {@code other} is this session or was opened with different kind of collector
+     */
+    public CollectorSession<T, R> merge(CollectorSession<T, R> other) {
+        Objects.requireNonNull(other);
+        if (other == this)
+            throw new IllegalArgumentException("Session can't be merged with itself");
+        if (other.collector.getClass() != collector.getClass())
+            throw new IllegalArgumentException("Session can be merged only with session of the same kind of collector");
+        PersistentHashTrie.Editor<Object, Object> editor = state.edit();
+        other.state.asMap().forEach((key, value) -> collector.merge(editor, key, value));
+        state = editor.persistent();
+        return this;
+    }
+}
@@ -1,8 +1,12 @@
 package com.mikerusoft.example.java8;
 
 import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Multimap;
 
+import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BiConsumer;
@@ -10,6 +14,8 @@ import java.util.function.BinaryOperator;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Collector;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 /**
  * @author Grinfeld Mikhail
@@ -35,15 +41,126 @@ public class Collectors {
     }
 
     public static <T> Collector<T, ?, Set<T>> toConcurrentSet() {
-        return new CollectorImpl<>(ConcurrentHashMap::newKeySet, Set::add,
-                (left, right) -> { left.addAll(right); return left; },
-                CollectorImpl.CH_CONCURRENT_NOID);
+        return new ConcurrentSetCollector<>();
     }
 
     public static <I,K,V> MultiMapCollector<I,K,V> toMultimap(Function<I, K> keyCreator, Function<I, V> valueCreator) {
         return new MultiMapCollector<>(keyCreator, valueCreator);
     }
 
+    /**
+     * Canonicalizes every element through a weak {@link Interner} before passing it to {@code downstream},
+     * so equal elements retained by the result share one instance. Null elements are passed as is.
+     * The interner is shared by all forks of all collects done by the returned collector.
+     */
+    public static <T, A, R> Collector<T, A, R> interning(Collector<T, A, R> downstream) {
+        return interning(downstream, Interners.newWeakInterner());
+    }
+
+    /**
+     * Same as {@link #interning(Collector)}, but with custom interner, e.g. {@link BoundedInterner}
+     */
+    public static <T, A, R> Collector<T, A, R> interning(Collector<T, A, R> downstream, Interner<T> interner) {
+        return new InterningCollector<>(downstream, interner);
+    }
+
+    /**
+     * Same as {@link #toMultimap(Function, Function)}, but keys and values are canonicalized through weak interners,
+     * so duplicated keys and values across buckets are retained only once.
+     */
+    public static <I,K,V> MultiMapCollector<I,K,V> toInterningMultimap(Function<I, K> keyCreator, Function<I, V> valueCreator) {
+        return toInterningMultimap(keyCreator, valueCreator, Interners.newWeakInterner(), Interners.newWeakInterner());
+    }
+
+    /**
+     * Same as {@link #toInterningMultimap(Function, Function)}, but every interner keeps at most
+     * {@code maximumSize} canonical instances, see {@link BoundedInterner}
+     */
+    public static <I,K,V> MultiMapCollector<I,K,V> toInterningMultimap(Function<I, K> keyCreator, Function<I, V> valueCreator, long maximumSize) {
+        return toInterningMultimap(keyCreator, valueCreator, BoundedInterner.create(maximumSize), BoundedInterner.create(maximumSize));
+    }
+
+    private static <I,K,V> MultiMapCollector<I,K,V> toInterningMultimap(Function<I, K> keyCreator, Function<I, V> valueCreator, Interner<K> keyInterner, Interner<V> valueInterner) {
+        return toMultimap(keyCreator.andThen(interned(keyInterner)), valueCreator.andThen(interned(valueInterner)));
+    }
+
+    /**
+     * Same as {@link #toMapWithNullValues(Function, Function)}, but keys and non-null values are canonicalized
+     * through weak interners.
+     */
+    public static <T, K, U, M extends Map<K, U>> Collector<T, M, M> toInterningMapWithNullValues(Function<? super T, ? extends K> keyMapper, Function<? super T, ? extends U> valueMapper) {
+        return toInterningMapWithNullValues(keyMapper, valueMapper, Interners.newWeakInterner(), Interners.newWeakInterner());
+    }
+
+    /**
+     * Same as {@link #toInterningMapWithNullValues(Function, Function)}, but every interner keeps at most
+     * {@code maximumSize} canonical instances, see {@link BoundedInterner}
+     */
+    public static <T, K, U, M extends Map<K, U>> Collector<T, M, M> toInterningMapWithNullValues(Function<? super T, ? extends K> keyMapper, Function<? super T, ? extends U> valueMapper, long maximumSize) {
+        return toInterningMapWithNullValues(keyMapper, valueMapper, BoundedInterner.create(maximumSize), BoundedInterner.create(maximumSize));
+    }
+
+    private static <T, K, U, M extends Map<K, U>> Collector<T, M, M> toInterningMapWithNullValues(Function<? super T, ? extends K> keyMapper, Function<? super T, ? extends U> valueMapper, Interner<K> keyInterner, Interner<U> valueInterner) {
+        return toMapWithNullValues(keyMapper.andThen(interned(keyInterner)), valueMapper.andThen(interned(valueInterner)));
+    }
+
+    private static <E> Function<E, E> interned(Interner<E> interner) {
+        return e -> e == null ? null : interner.intern(e);
+    }
+
+    /**
+     * Same as {@link #toMapWithNullValues(Function, Function)}, but the result is compacted into an immutable map
+     * with keys and values in flat arrays and open addressing lookup. Intended for long living read-only lookup tables:
+     * it takes less memory than {@link HashMap} and is safe for concurrent reads.
+     */
+    public static <T, K, U> Collector<T, ?, Map<K, U>> toFrozenMap(Function<? super T, ? extends K> keyMapper, Function<? super T, ? extends U> valueMapper) {
+        return java.util.stream.Collectors.collectingAndThen(
+                Collectors.<T, K, U, Map<K, U>>toMapWithNullValues(keyMapper, valueMapper), FrozenMap::copyOf);
+    }
+
+    /**
+     * Same as {@link #toMultimap(Function, Function)}, but the result is compacted into an immutable multimap
+     * with all values in one contiguous array, see {@link #toFrozenMap(Function, Function)}.
+     */
+    public static <I,K,V> Collector<I, ?, Multimap<K,V>> toFrozenMultimap(Function<I, K> keyCreator, Function<I, V> valueCreator) {
+        return java.util.stream.Collectors.collectingAndThen(toMultimap(keyCreator, valueCreator), FrozenMultimap::copyOf);
+    }
+
+    /**
+     * Same as {@link #toMultimap(Function, Function)}, but every fork partitions its elements by key hash
+     * into {@code shards} multimaps. Combining forks only concatenates shard references and the finisher
+     * merges every shard independently in parallel, so there is no full {@code putAll} on every fork-join level.
+     * The result is a read-only view over the shards.
+     */
+    public static <I,K,V> Collector<I, ?, Multimap<K,V>> toShardedMultimap(Function<I, K> keyCreator, Function<I, V> valueCreator, int shards) {
+        return new ShardedMultiMapCollector<>(keyCreator, valueCreator, shards);
+    }
+
+    /**
+     * Same as {@link #toMapWithNullValues(Function, Function)}, but accumulates into {@code shards} maps
+     * partitioned by key hash, see {@link #toShardedMultimap(Function, Function, int)}.
+     * The result is a read-only view over the shards.
+     */
+    public static <T, K, U> Collector<T, ?, Map<K, U>> toShardedMapWithNullValues(Function<? super T, ? extends K> keyMapper, Function<? super T, ? extends U> valueMapper, int shards) {
+        return new ShardedMapWithNullValuesCollector<>(keyMapper, valueMapper, shards);
+    }
+
+    /**
+     * Groups values by key as {@link #toMultimap(Function, Function)} does, but keeps at most {@code budget} entries
+     * in memory per accumulation container. When the budget is exceeded, entries are sorted by key and spilled
+     * to a run file in {@code tmpDir} using {@code codec}. The runs are merged on finish.
+     * The result is a lazy stream of key groups sorted by key, with values in encounter order.
+     * Only one group is materialized at a time, but values of a single key are collected into an in-memory list,
+     * so all values of the largest key should fit into the heap.
+     * The stream should be closed (e.g. try-with-resources) to delete run files, if it isn't consumed completely.
+     * The returned collector is meant for a single collect: when the collect fails, run files of all its forks
+     * are deleted and the collector refuses to spill anymore.
+     */
+    public static <I, K extends Comparable<? super K>, V> Collector<I, ?, Stream<ImmutablePair<K, List<V>>>> toExternalMultimap(
+            Function<I, K> keyCreator, Function<I, V> valueCreator, int budget, Path tmpDir, ExternalMultimap.Codec<K, V> codec) {
+        return new ExternalMultiMapCollector<>(keyCreator, valueCreator, budget, tmpDir, codec);
+    }
+
     static class MapWithNullValuesCollector<T, K, U, M extends Map<K, U>> implements Collector<T, M, M> {
 
         private Function<? super T, ? extends K> keyMapper;
@@ -151,7 +268,31 @@ public class Collectors {
         }
     }
 
-    static class MultiMapCollector<I,K,V> implements Collector<I, Multimap<K, V>, Multimap<K, V>> {
+    static class ConcurrentSetCollector<T> extends CollectorImpl<T, T, Set<T>> implements IncrementalCollector<T, T, Boolean, Set<T>> {
+
+        private ConcurrentSetCollector() {
+            super(ConcurrentHashMap::newKeySet, Set::add,
+                    (left, right) -> { left.addAll(right); return left; },
+                    CollectorImpl.CH_CONCURRENT_NOID);
+        }
+
+        @Override
+        public void accumulate(PersistentHashTrie.Editor<T, Boolean> editor, T element) {
+            editor.put(element, Boolean.TRUE);
+        }
+
+        @Override
+        public void merge(PersistentHashTrie.Editor<T, Boolean> editor, T key, Boolean value) {
+            editor.put(key, value);
+        }
+
+        @Override
+        public Set<T> snapshot(PersistentHashTrie<T, Boolean> trie) {
+            return Collections.unmodifiableSet(trie.asMap().keySet());
+        }
+    }
+
+    static class MultiMapCollector<I,K,V> implements Collector<I, Multimap<K, V>, Multimap<K, V>>, IncrementalCollector<I, K, AppendOnlyList<V>, Multimap<K, V>> {
 
         private Function<I, K> keyCreator;
         private Function<I, V> valueCreator;
@@ -185,5 +326,317 @@ public class Collectors {
         public Set<Characteristics> characteristics() {
             return Collections.emptySet();
         }
+
+        @Override
+        public void accumulate(PersistentHashTrie.Editor<K, AppendOnlyList<V>> editor, I element) {
+            PersistentMultimap.put(editor, keyCreator.apply(element), valueCreator.apply(element));
+        }
+
+        @Override
+        public void merge(PersistentHashTrie.Editor<K, AppendOnlyList<V>> editor, K key, AppendOnlyList<V> values) {
+            PersistentMultimap.putAll(editor, key, values);
+        }
+
+        @Override
+        public Multimap<K, V> snapshot(PersistentHashTrie<K, AppendOnlyList<V>> trie) {
+            return new PersistentMultimap<>(trie);
+        }
+    }
+
+    /**
+     * Base class for collectors which partition elements by key hash into shards.
+     * Accumulation container is a list of forks, each fork is a list of its shards. Accumulator always writes
+     * into the first fork, combiner just concatenates fork lists and finisher merges i-th shard of every fork.
+     *
+     * @param <T> the type of elements to be collected
+     * @param <K> the type of keys
+     * @param <S> the type of a single shard
+     * @param <R> the type of the result
+     */
+    static abstract class ShardedCollector<T, K, S, R> implements Collector<T, List<List<S>>, R> {
+
+        private final int shards;
+
+        ShardedCollector(int shards) {
+            if (shards < 1)
+                throw new IllegalArgumentException("Number of shards should be positive, but was " + shards);
+            this.shards = shards;
+        }
+
+        abstract K key(T element);
+
+        abstract S newShard();
+
+        abstract void accumulate(S shard, K key, T element);
+
+        /**
+         * Merges the same shard of every fork. Shouldn't modify any of given shards.
+         */
+        abstract S merge(List<S> forkShards);
+
+        abstract R view(List<S> shards);
+
+        @Override
+        public Supplier<List<List<S>>> supplier() {
+            return () -> {
+                List<S> fork = new ArrayList<>(shards);
+                for (int i = 0; i < shards; i++)
+                    fork.add(newShard());
+                List<List<S>> forks = new ArrayList<>();
+                forks.add(fork);
+                return forks;
+            };
+        }
+
+        @Override
+        public BiConsumer<List<List<S>>, T> accumulator() {
+            return (forks, element) -> {
+                K key = key(element);
+                accumulate(forks.get(0).get(ShardedMap.shardIndex(key, shards)), key, element);
+            };
+        }
+
+        @Override
+        public BinaryOperator<List<List<S>>> combiner() {
+            return (l, r) -> { l.addAll(r); return l; };
+        }
+
+        @Override
+        public Function<List<List<S>>, R> finisher() {
+            return forks -> {
+                if (forks.size() == 1)
+                    return view(forks.get(0));
+                IntStream indexes = IntStream.range(0, shards);
+                if (shards > 1)
+                    indexes = indexes.parallel();
+                List<S> merged = indexes
+                        .mapToObj(i -> forks.stream().map(f -> f.get(i)).collect(java.util.stream.Collectors.toList()))
+                        .map(this::merge)
+                        .collect(java.util.stream.Collectors.toList());
+                return view(merged);
+            };
+        }
+
+        @Override
+        public Set<Characteristics> characteristics() {
+            return Collections.emptySet();
+        }
+    }
+
+    static class ShardedMultiMapCollector<I,K,V> extends ShardedCollector<I, K, ListMultimap<K, V>, Multimap<K, V>>
+            implements IncrementalCollector<I, K, AppendOnlyList<V>, Multimap<K, V>> {
+
+        private Function<I, K> keyCreator;
+        private Function<I, V> valueCreator;
+
+        private ShardedMultiMapCollector(Function<I, K> keyCreator, Function<I, V> valueCreator, int shards) {
+            super(shards);
+            this.keyCreator = keyCreator;
+            this.valueCreator = valueCreator;
+        }
+
+        @Override
+        K key(I element) {
+            return keyCreator.apply(element);
+        }
+
+        @Override
+        ListMultimap<K, V> newShard() {
+            return ArrayListMultimap.create();
+        }
+
+        @Override
+        void accumulate(ListMultimap<K, V> shard, K key, I element) {
+            shard.put(key, valueCreator.apply(element));
+        }
+
+        @Override
+        ListMultimap<K, V> merge(List<ListMultimap<K, V>> forkShards) {
+            ListMultimap<K, V> merged = ArrayListMultimap.create();
+            forkShards.forEach(merged::putAll);
+            return merged;
+        }
+
+        @Override
+        Multimap<K, V> view(List<ListMultimap<K, V>> shards) {
+            return new ShardedMultimap<>(shards);
+        }
+
+        @Override
+        public void accumulate(PersistentHashTrie.Editor<K, AppendOnlyList<V>> editor, I element) {
+            PersistentMultimap.put(editor, keyCreator.apply(element), valueCreator.apply(element));
+        }
+
+        @Override
+        public void merge(PersistentHashTrie.Editor<K, AppendOnlyList<V>> editor, K key, AppendOnlyList<V> values) {
+            PersistentMultimap.putAll(editor, key, values);
+        }
+
+        @Override
+        public Multimap<K, V> snapshot(PersistentHashTrie<K, AppendOnlyList<V>> trie) {
+            return new PersistentMultimap<>(trie);
+        }
+    }
+
+    static class ShardedMapWithNullValuesCollector<T, K, U> extends ShardedCollector<T, K, Map<K, U>, Map<K, U>>
+            implements IncrementalCollector<T, K, U, Map<K, U>> {
+
+        private Function<? super T, ? extends K> keyMapper;
+        private Function<? super T, ? extends U> valueMapper;
+
+        private ShardedMapWithNullValuesCollector(Function<? super T, ? extends K> keyMapper, Function<? super T, ? extends U> valueMapper, int shards) {
+            super(shards);
+            this.keyMapper = keyMapper;
+            this.valueMapper = valueMapper;
+        }
+
+        @Override
+        K key(T element) {
+            return keyMapper.apply(element);
+        }
+
+        @Override
+        Map<K, U> newShard() {
+            return new HashMap<>();
+        }
+
+        @Override
+        void accumulate(Map<K, U> shard, K key, T element) {
+            if (shard.containsKey(key)) {
+                throw new IllegalStateException("Duplicate key " + key);
+            }
+            shard.put(key, valueMapper.apply(element));
+        }
+
+        @Override
+        Map<K, U> merge(List<Map<K, U>> forkShards) {
+            Map<K, U> merged = new HashMap<>();
+            for (Map<K, U> shard : forkShards) {
+                for (Map.Entry<K, U> e : shard.entrySet()) {
+                    if (merged.containsKey(e.getKey())) {
+                        throw new IllegalStateException("Duplicate key " + e.getKey());
+                    }
+                    merged.put(e.getKey(), e.getValue());
+                }
+            }
+            return merged;
+        }
+
+        @Override
+        Map<K, U> view(List<Map<K, U>> shards) {
+            return new ShardedMap<>(shards);
+        }
+
+        @Override
+        public void accumulate(PersistentHashTrie.Editor<K, U> editor, T element) {
+            merge(editor, keyMapper.apply(element), valueMapper.apply(element));
+        }
+
+        @Override
+        public void merge(PersistentHashTrie.Editor<K, U> editor, K key, U value) {
+            if (editor.containsKey(key)) {
+                throw new IllegalStateException("Duplicate key " + key);
+            }
+            editor.put(key, value);
+        }
+
+        @Override
+        public Map<K, U> snapshot(PersistentHashTrie<K, U> trie) {
+            return trie.asMap();
+        }
+    }
+
+    static class ExternalMultiMapCollector<I, K extends Comparable<? super K>, V> implements Collector<I, ExternalMultimap<K, V>, Stream<ImmutablePair<K, List<V>>>> {
+
+        private Function<I, K> keyCreator;
+        private Function<I, V> valueCreator;
+        private int budget;
+        private Path tmpDir;
+        private ExternalMultimap.Codec<K, V> codec;
+        private final ExternalMultimap.RunRegistry registry = new ExternalMultimap.RunRegistry();
+
+        private ExternalMultiMapCollector(Function<I, K> keyCreator, Function<I, V> valueCreator, int budget, Path tmpDir, ExternalMultimap.Codec<K, V> codec) {
+            this.keyCreator = keyCreator;
+            this.valueCreator = valueCreator;
+            this.budget = budget;
+            this.tmpDir = tmpDir;
+            this.codec = codec;
+        }
+
+        @Override
+        public Supplier<ExternalMultimap<K, V>> supplier() {
+            return () -> new ExternalMultimap<>(budget, tmpDir, codec, registry);
+        }
+
+        @Override
+        public BiConsumer<ExternalMultimap<K, V>, I> accumulator() {
+            return (map, val) -> {
+                try {
+                    map.put(keyCreator.apply(val), valueCreator.apply(val));
+                } catch (RuntimeException | Error e) {
+                    registry.fail();
+                    throw e;
+                }
+            };
+        }
+
+        @Override
+        public BinaryOperator<ExternalMultimap<K, V>> combiner() {
+            return (l, r) -> {
+                try {
+                    return l.combine(r);
+                } catch (RuntimeException | Error e) {
+                    registry.fail();
+                    throw e;
+                }
+            };
+        }
+
+        @Override
+        public Function<ExternalMultimap<K, V>, Stream<ImmutablePair<K, List<V>>>> finisher() {
+            return ExternalMultimap::stream;
+        }
+
+        @Override
+        public Set<Characteristics> characteristics() {
+            return Collections.emptySet();
+        }
+    }
+
+    static class InterningCollector<T, A, R> implements Collector<T, A, R> {
+
+        private Collector<T, A, R> downstream;
+        private Function<T, T> interned;
+
+        private InterningCollector(Collector<T, A, R> downstream, Interner<T> interner) {
+            this.downstream = downstream;
+            this.interned = interned(interner);
+        }
+
+        @Override
+        public Supplier<A> supplier() {
+            return downstream.supplier();
+        }
+
+        @Override
+        public BiConsumer<A, T> accumulator() {
+            BiConsumer<A, T> accumulator = downstream.accumulator();
+            return (container, element) -> accumulator.accept(container, interned.apply(element));
+        }
+
+        @Override
+        public BinaryOperator<A> combiner() {
+            return downstream.combiner();
+        }
+
+        @Override
+        public Function<A, R> finisher() {
+            return downstream.finisher();
+        }
+
+        @Override
+        public Set<Characteristics> characteristics() {
+            return downstream.characteristics();
+        }
     }
 }
@@ -0,0 +1,366 @@
+package com.mikerusoft.example.java8;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Accumulation container of {@link Collectors#toExternalMultimap(java.util.function.Function, java.util.function.Function, int, Path, Codec)}.
+ * Keeps at most {@code budget} entries in memory, when the budget is exceeded entries are sorted by key
+ * and spilled into a run file in {@code tmpDir}. On finish runs are merged, at most {@code fanIn} at once
+ * (in several passes through intermediate runs if needed), into a stream of key groups,
+ * sorted by key, with values in encounter order. Run files are deleted when exhausted or when the stream is closed,
+ * or when the collect fails (see {@link RunRegistry}).
+ * Values of a single key are materialized into one list, so memory is bounded by the largest group, not by the budget.
+ */
+public final class ExternalMultimap<K extends Comparable<? super K>, V> {
+
+    /**
+     * Serializes keys and values of spilled entries.
+     */
+    public interface Codec<K, V> {
+        void writeKey(DataOutput out, K key) throws IOException;
+        K readKey(DataInput in) throws IOException;
+        void writeValue(DataOutput out, V value) throws IOException;
+        V readValue(DataInput in) throws IOException;
+    }
+
+    static final int DEFAULT_FAN_IN = 64;
+
+    /**
+     * Run files spilled by all containers of one collect, so a failed collect deletes the runs of its abandoned
+     * forks too. Once failed, runs spilled later by forks, which are still running, are deleted immediately.
+     * Runs are released, when the finisher takes them over.
+     */
+    static final class RunRegistry {
+        private final Set<Path> runs = new HashSet<>();
+        private boolean failed;
+
+        synchronized void register(Path run) {
+            if (failed) {
+                delete(run);
+                throw new IllegalStateException("Collect has already failed");
+            }
+            runs.add(run);
+        }
+
+        synchronized void release(Collection<Path> finished) {
+            runs.removeAll(finished);
+        }
+
+        synchronized void fail() {
+            failed = true;
+            runs.forEach(ExternalMultimap::delete);
+            runs.clear();
+        }
+    }
+
+    private final int budget;
+    private final Path tmpDir;
+    private final Codec<K, V> codec;
+    private final int fanIn;
+    private final RunRegistry registry;
+
+    private List<ImmutablePair<K, V>> buffer = new ArrayList<>();
+    private final List<Path> runs = new ArrayList<>();
+
+    ExternalMultimap(int budget, Path tmpDir, Codec<K, V> codec, RunRegistry registry) {
+        this(budget, tmpDir, codec, DEFAULT_FAN_IN, registry);
+    }
+
+    ExternalMultimap(int budget, Path tmpDir, Codec<K, V> codec, int fanIn, RunRegistry registry) {
+        if (budget < 1)
+            throw new IllegalArgumentException("Budget should be positive, but was " + budget);
+        if (fanIn < 2)
+            throw new IllegalArgumentException("Fan-in should be at least 2, but was " + fanIn);
+        this.budget = budget;
+        this.tmpDir = Objects.requireNonNull(tmpDir);
+        this.codec = Objects.requireNonNull(codec);
+        this.fanIn = fanIn;
+        this.registry = Objects.requireNonNull(registry);
+    }
+
+    void put(K key, V value) {
+        Objects.requireNonNull(key, "Null keys are not supported");
+        buffer.add(ImmutablePair.of(key, value));
+        if (buffer.size() >= budget)
+            spill();
+    }
+
+    ExternalMultimap<K, V> combine(ExternalMultimap<K, V> other) {
+        if (other.runs.isEmpty()) {
+            buffer.addAll(other.buffer);
+            if (buffer.size() >= budget)
+                spill();
+        } else {
+            // keep encounter order: our buffer goes before other's runs
+            spill();
+            runs.addAll(other.runs);
+            buffer = other.buffer;
+        }
+        return this;
+    }
+
+    Stream<ImmutablePair<K, List<V>>> stream() {
+        registry.release(runs);
+        GroupIterator groups = new GroupIterator();
+        return Streams.of(groups).onClose(groups::close);
+    }
+
+    private static <K extends Comparable<? super K>, V> Comparator<ImmutablePair<K, V>> byKey() {
+        return (p1, p2) -> p1.getLeft().compareTo(p2.getLeft());
+    }
+
+    private Path newRun() throws IOException {
+        return Files.createTempFile(tmpDir, "multimap-", ".run");
+    }
+
+    private static <K extends Comparable<? super K>, V> PriorityQueue<Source<K, V>> newQueue() {
+        return new PriorityQueue<>(Comparator.<Source<K, V>, K>comparing(s -> s.key).thenComparingInt(s -> s.order));
+    }
+
+    /**
+     * Merges consecutive batches of at most {@code fanIn} runs into intermediate runs,
+     * until there are at most {@code fanIn} runs left
+     */
+    private void mergeRuns() {
+        while (runs.size() > fanIn) {
+            List<Path> merged = new ArrayList<>();
+            try {
+                for (int from = 0; from < runs.size(); from += fanIn)
+                    merged.add(mergeRuns(runs.subList(from, Math.min(from + fanIn, runs.size()))));
+            } catch (RuntimeException e) {
+                merged.forEach(ExternalMultimap::delete);
+                throw e;
+            }
+            runs.clear();
+            runs.addAll(merged);
+        }
+    }
+
+    private Path mergeRuns(List<Path> batch) {
+        if (batch.size() == 1)
+            return batch.get(0);
+        List<RunSource> sources = new ArrayList<>();
+        Path merged = null;
+        try {
+            int size = 0;
+            for (Path run : batch) {
+                RunSource source = new RunSource(sources.size(), run);
+                sources.add(source);
+                size += source.remaining;
+            }
+            PriorityQueue<Source<K, V>> queue = newQueue();
+            for (RunSource source : sources) {
+                if (source.advance())
+                    queue.add(source);
+            }
+            merged = newRun();
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(merged)))) {
+                out.writeInt(size);
+                while (!queue.isEmpty()) {
+                    Source<K, V> source = queue.poll();
+                    codec.writeKey(out, source.key);
+                    codec.writeValue(out, source.value);
+                    if (source.advance())
+                        queue.add(source);
+                }
+            }
+            return merged;
+        } catch (IOException e) {
+            if (merged != null)
+                delete(merged);
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            if (merged != null)
+                delete(merged);
+            throw e;
+        } finally {
+            sources.forEach(Source::close); // deletes merged runs
+        }
+    }
+
+    private static void delete(Path run) {
+        try {
+            Files.deleteIfExists(run);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void spill() {
+        if (buffer.isEmpty())
+            return;
+        buffer.sort(byKey()); // stable, so values of the same key keep encounter order
+        try {
+            Path run = newRun();
+            registry.register(run);
+            runs.add(run);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run)))) {
+                out.writeInt(buffer.size());
+                for (ImmutablePair<K, V> entry : buffer) {
+                    codec.writeKey(out, entry.getLeft());
+                    codec.writeValue(out, entry.getRight());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer = new ArrayList<>();
+    }
+
+    /**
+     * Sorted source of entries: either a run file or the in-memory buffer
+     */
+    private abstract static class Source<K, V> {
+        final int order;
+        K key;
+        V value;
+
+        Source(int order) {
+            this.order = order;
+        }
+
+        abstract boolean advance();
+
+        void close() {}
+    }
+
+    private class RunSource extends Source<K, V> {
+        private final Path run;
+        private final DataInputStream in;
+        private int remaining;
+        private boolean closed;
+
+        RunSource(int order, Path run) throws IOException {
+            super(order);
+            this.run = run;
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run)));
+            try {
+                this.remaining = in.readInt();
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        @Override
+        boolean advance() {
+            if (remaining == 0) {
+                close();
+                return false;
+            }
+            try {
+                key = codec.readKey(in);
+                value = codec.readValue(in);
+            } catch (IOException e) {
+                close();
+                throw new UncheckedIOException(e);
+            }
+            remaining--;
+            return true;
+        }
+
+        @Override
+        void close() {
+            if (closed)
+                return;
+            closed = true;
+            try {
+                in.close();
+                Files.deleteIfExists(run);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private class BufferSource extends Source<K, V> {
+        private final Iterator<ImmutablePair<K, V>> entries;
+
+        BufferSource(int order, List<ImmutablePair<K, V>> buffer) {
+            super(order);
+            this.entries = buffer.iterator();
+        }
+
+        @Override
+        boolean advance() {
+            if (!entries.hasNext())
+                return false;
+            ImmutablePair<K, V> entry = entries.next();
+            key = entry.getLeft();
+            value = entry.getRight();
+            return true;
+        }
+    }
+
+    private class GroupIterator implements Iterator<ImmutablePair<K, List<V>>> {
+
+        private final List<Source<K, V>> sources = new ArrayList<>();
+        private final PriorityQueue<Source<K, V>> queue = newQueue();
+
+        GroupIterator() {
+            buffer.sort(byKey());
+            try {
+                mergeRuns();
+                for (Path run : runs)
+                    sources.add(new RunSource(sources.size(), run));
+                sources.add(new BufferSource(sources.size(), buffer));
+                for (Source<K, V> source : sources) {
+                    if (source.advance())
+                        queue.add(source);
+                }
+            } catch (IOException e) {
+                close();
+                throw new UncheckedIOException(e);
+            } catch (RuntimeException e) {
+                close();
+                throw e;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !queue.isEmpty();
+        }
+
+        @Override
+        public ImmutablePair<K, List<V>> next() {
+            if (queue.isEmpty())
+                throw new NoSuchElementException();
+            K key = queue.peek().key;
+            List<V> values = new ArrayList<>();
+            while (!queue.isEmpty() && queue.peek().key.compareTo(key) == 0) {
+                Source<K, V> source = queue.poll();
+                values.add(source.value);
+                if (source.advance())
+                    queue.add(source);
+            }
+            return ImmutablePair.of(key, values);
+        }
+
+        void close() {
+            queue.clear();
+            sources.forEach(Source::close);
+            runs.forEach(ExternalMultimap::delete);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.mikerusoft.example.java8;
+
+import java.util.Objects;
+
+/**
+ * Immutable open addressing (linear probing) index over a flat array of distinct keys.
+ * Maps a key to its position in the array, so values can be kept in parallel flat arrays.
+ * Null key is allowed.
+ */
+final class FrozenHashIndex {
+
+    private final Object[] keys;
+    private final int[] table; // slot -> key position + 1, 0 is an empty slot
+    private final int mask;
+
+    FrozenHashIndex(Object[] keys) {
+        this.keys = keys;
+        int capacity = Integer.highestOneBit(Math.max(2, keys.length) * 2 - 1) << 1; // load factor <= 0.5
+        this.table = new int[capacity];
+        this.mask = capacity - 1;
+        for (int position = 0; position < keys.length; position++) {
+            int slot = hash(keys[position]) & mask;
+            while (table[slot] != 0) {
+                if (Objects.equals(keys[table[slot] - 1], keys[position]))
+                    throw new IllegalArgumentException("Duplicate key " + keys[position]);
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = position + 1;
+        }
+    }
+
+    private static int hash(Object key) {
+        int h = key == null ? 0 : key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @return position of the key in the keys array or -1, if there is no such key
+     */
+    int indexOf(Object key) {
+        int slot = hash(key) & mask;
+        int entry;
+        while ((entry = table[slot]) != 0) {
+            if (Objects.equals(keys[entry - 1], key))
+                return entry - 1;
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+}
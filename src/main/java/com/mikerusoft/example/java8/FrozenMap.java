@@ -0,0 +1,86 @@
+package com.mikerusoft.example.java8;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Immutable, array-backed {@link Map}: keys and values are stored in two flat parallel arrays
+ * and looked up through {@link FrozenHashIndex}. Null values (and a null key) are allowed.
+ * See {@link Collectors#toFrozenMap(java.util.function.Function, java.util.function.Function)}
+ */
+final class FrozenMap<K, V> extends AbstractMap<K, V> {
+
+    static <K, V> Map<K, V> copyOf(Map<? extends K, ? extends V> map) {
+        Object[] keys = new Object[map.size()];
+        Object[] values = new Object[map.size()];
+        int position = 0;
+        for (Map.Entry<? extends K, ? extends V> e : map.entrySet()) {
+            keys[position] = e.getKey();
+            values[position++] = e.getValue();
+        }
+        return new FrozenMap<>(keys, values);
+    }
+
+    private final Object[] keys;
+    private final Object[] values;
+    private final FrozenHashIndex index;
+
+    private FrozenMap(Object[] keys, Object[] values) {
+        this.keys = keys;
+        this.values = values;
+        this.index = new FrozenHashIndex(keys);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        int position = index.indexOf(key);
+        return position < 0 ? null : (V) values[position];
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return index.indexOf(key) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return keys.length;
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new AbstractSet<Entry<K, V>>() {
+            @Override
+            public Iterator<Entry<K, V>> iterator() {
+                return new Iterator<Entry<K, V>>() {
+                    private int position = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return position < keys.length;
+                    }
+
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public Entry<K, V> next() {
+                        if (!hasNext())
+                            throw new NoSuchElementException();
+                        Entry<K, V> entry = new SimpleImmutableEntry<>((K) keys[position], (V) values[position]);
+                        position++;
+                        return entry;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return keys.length;
+            }
+        };
+    }
+}
@@ -0,0 +1,156 @@
+package com.mikerusoft.example.java8;
+
+import com.google.common.collect.Multimap;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * Immutable, array-backed {@link Multimap}: distinct keys are stored in a flat array and looked up
+ * through {@link FrozenHashIndex}, values of all keys are stored in one contiguous array,
+ * where values of i-th key are between {@code offsets[i]} and {@code offsets[i + 1]}.
+ * See {@link Collectors#toFrozenMultimap(java.util.function.Function, java.util.function.Function)}
+ */
+final class FrozenMultimap<K, V> extends AbstractReadOnlyMultimap<K, V> {
+
+    static <K, V> Multimap<K, V> copyOf(Multimap<? extends K, ? extends V> multimap) {
+        Map<? extends K, ? extends Collection<? extends V>> groups = multimap.asMap();
+        Object[] keys = new Object[groups.size()];
+        int[] offsets = new int[groups.size() + 1];
+        Object[] values = new Object[multimap.size()];
+        int position = 0;
+        int offset = 0;
+        for (Map.Entry<? extends K, ? extends Collection<? extends V>> e : groups.entrySet()) {
+            keys[position] = e.getKey();
+            for (V value : e.getValue())
+                values[offset++] = value;
+            offsets[++position] = offset;
+        }
+        return new FrozenMultimap<>(keys, offsets, values);
+    }
+
+    private final Object[] keys;
+    private final int[] offsets;
+    private final Object[] values;
+    private final FrozenHashIndex index;
+    private final Map<K, Collection<V>> asMap = new AsMap();
+
+    private FrozenMultimap(Object[] keys, int[] offsets, Object[] values) {
+        this.keys = keys;
+        this.offsets = offsets;
+        this.values = values;
+        this.index = new FrozenHashIndex(keys);
+    }
+
+    private List<V> valuesAt(int position) {
+        return new Slice<>(values, offsets[position], offsets[position + 1]);
+    }
+
+    /**
+     * Read-only view over {@code values[from, to)}
+     */
+    private static final class Slice<V> extends AbstractList<V> implements RandomAccess {
+        private final Object[] values;
+        private final int from;
+        private final int to;
+
+        Slice(Object[] values, int from, int to) {
+            this.values = values;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V get(int index) {
+            if (index < 0 || index >= to - from)
+                throw new IndexOutOfBoundsException("Index: " + index + ", size: " + (to - from));
+            return (V) values[from + index];
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+    }
+
+    @Override
+    public Collection<V> get(K key) {
+        int position = index.indexOf(key);
+        return position < 0 ? Collections.emptyList() : valuesAt(position);
+    }
+
+    @Override
+    public int size() {
+        return values.length;
+    }
+
+    @Override
+    public Collection<V> values() {
+        return new Slice<>(values, 0, values.length);
+    }
+
+    @Override
+    public Map<K, Collection<V>> asMap() {
+        return asMap;
+    }
+
+    private class AsMap extends AbstractMap<K, Collection<V>> {
+        @Override
+        public Collection<V> get(Object key) {
+            int position = index.indexOf(key);
+            return position < 0 ? null : valuesAt(position);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return index.indexOf(key) >= 0;
+        }
+
+        @Override
+        public int size() {
+            return keys.length;
+        }
+
+        @Override
+        public Set<Entry<K, Collection<V>>> entrySet() {
+            return new AbstractSet<Entry<K, Collection<V>>>() {
+                @Override
+                public Iterator<Entry<K, Collection<V>>> iterator() {
+                    return new Iterator<Entry<K, Collection<V>>>() {
+                        private int position = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return position < keys.length;
+                        }
+
+                        @Override
+                        @SuppressWarnings("unchecked")
+                        public Entry<K, Collection<V>> next() {
+                            if (!hasNext())
+                                throw new NoSuchElementException();
+                            Entry<K, Collection<V>> entry = new SimpleImmutableEntry<>((K) keys[position], valuesAt(position));
+                            position++;
+                            return entry;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return keys.length;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.mikerusoft.example.java8;
+
+/**
+ * Collector which state may be kept as a {@link PersistentHashTrie} from key to its collected value.
+ * Used by {@link CollectorSession}: a batch copies only the trie paths to the keys it touches,
+ * everything else is shared with previous snapshots.
+ *
+ * @param <T> the type of elements to be collected
+ * @param <K> the type of keys
+ * @param <V> the type of value collected per key
+ * @param <R> the type of the result
+ */
+interface IncrementalCollector<T, K, V, R> {
+
+    /**
+     * Adds element into the trie being edited. Shouldn't modify anything referenced by previous versions of the trie.
+     */
+    void accumulate(PersistentHashTrie.Editor<K, V> editor, T element);
+
+    /**
+     * Adds value collected for the key by another session into the trie being edited, {@code value} isn't modified
+     */
+    void merge(PersistentHashTrie.Editor<K, V> editor, K key, V value);
+
+    /**
+     * @return read-only view over the version of the trie
+     */
+    R snapshot(PersistentHashTrie<K, V> trie);
+}
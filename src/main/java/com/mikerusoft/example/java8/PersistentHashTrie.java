@@ -0,0 +1,329 @@
+package com.mikerusoft.example.java8;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Persistent hash array mapped trie: every version is immutable, {@link Editor} builds the next version copying
+ * only the paths to the keys it changes, all other nodes are shared with previous versions. Nodes created by
+ * an editor are modified in place until {@link Editor#persistent()}, so a path changed many times by one edit
+ * is copied once. Allows {@code null} keys and values.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ */
+final class PersistentHashTrie<K, V> {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    // levels consume hash bits 0..34, so there are at most 7 bitmap levels and collision node under them
+    private static final int MAX_DEPTH = 8;
+
+    private static final PersistentHashTrie<?, ?> EMPTY = new PersistentHashTrie<>(null, 0);
+
+    private final Node root; // null, if empty
+    private final int size;
+
+    private PersistentHashTrie(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K, V> PersistentHashTrie<K, V> empty() {
+        return (PersistentHashTrie<K, V>) EMPTY;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean containsKey(Object key) {
+        return find(root, key) != null;
+    }
+
+    /**
+     * @return value of the key or {@code null}, if there is no such key
+     */
+    V get(Object key) {
+        Entry<K, V> entry = find(root, key);
+        return entry == null ? null : entry.getValue();
+    }
+
+    /**
+     * @return editor, which starts from this version. This version isn't affected by the editor.
+     */
+    Editor<K, V> edit() {
+        return new Editor<>(root, size);
+    }
+
+    /**
+     * @return read-only map view of this version
+     */
+    Map<K, V> asMap() {
+        return new MapView();
+    }
+
+    /**
+     * Builds new version of the trie, not thread safe.
+     */
+    static final class Editor<K, V> {
+
+        // nodes created with the current owner aren't shared with any version yet, so they are modified in place
+        private Object owner = new Object();
+        private Node root;
+        private int size;
+        private boolean added;
+
+        private Editor(Node root, int size) {
+            this.root = root;
+            this.size = size;
+        }
+
+        boolean containsKey(Object key) {
+            return find(root, key) != null;
+        }
+
+        V get(Object key) {
+            Entry<K, V> entry = find(root, key);
+            return entry == null ? null : entry.getValue();
+        }
+
+        void put(K key, V value) {
+            added = false;
+            root = put(root, 0, new Entry<>(key, value));
+            if (added)
+                size++;
+        }
+
+        /**
+         * @return version with everything put so far. The editor may be used further, the returned version isn't affected.
+         */
+        PersistentHashTrie<K, V> persistent() {
+            owner = new Object();
+            return new PersistentHashTrie<>(root, size);
+        }
+
+        private Node put(Node node, int shift, Entry<K, V> entry) {
+            if (node == null) {
+                added = true;
+                return bitmapNode(bit(entry.hash, shift), new Object[] { entry });
+            }
+            if (node.collision) {
+                if (node.hash != entry.hash)
+                    return put(bitmapNode(bit(node.hash, shift), new Object[] { node }), shift, entry);
+                for (int i = 0; i < node.array.length; i++) {
+                    if (Objects.equals(((Entry<?, ?>) node.array[i]).getKey(), entry.getKey()))
+                        return withSlot(node, i, entry);
+                }
+                added = true;
+                return withInserted(node, 0, node.array.length, entry);
+            }
+            int bit = bit(entry.hash, shift);
+            int index = Integer.bitCount(node.bitmap & (bit - 1));
+            if ((node.bitmap & bit) == 0) {
+                added = true;
+                return withInserted(node, bit, index, entry);
+            }
+            Object child = node.array[index];
+            if (child instanceof Entry) {
+                Entry<?, ?> existing = (Entry<?, ?>) child;
+                if (existing.hash == entry.hash && Objects.equals(existing.getKey(), entry.getKey()))
+                    return existing.getValue() == entry.getValue() ? node : withSlot(node, index, entry);
+                added = true;
+                return withSlot(node, index, split(shift + BITS, existing, entry));
+            }
+            Node updated = put((Node) child, shift + BITS, entry);
+            return updated == child ? node : withSlot(node, index, updated);
+        }
+
+        private Node bitmapNode(int bitmap, Object[] array) {
+            return new Node(owner, false, 0, bitmap, array);
+        }
+
+        private Node collisionNode(int hash, Object[] array) {
+            return new Node(owner, true, hash, 0, array);
+        }
+
+        private Node split(int shift, Entry<?, ?> a, Entry<?, ?> b) {
+            if (a.hash == b.hash)
+                return collisionNode(a.hash, new Object[] { a, b });
+            int fragmentA = (a.hash >>> shift) & MASK;
+            int fragmentB = (b.hash >>> shift) & MASK;
+            if (fragmentA == fragmentB)
+                return bitmapNode(1 << fragmentA, new Object[] { split(shift + BITS, a, b) });
+            Object[] array = fragmentA < fragmentB ? new Object[] { a, b } : new Object[] { b, a };
+            return bitmapNode((1 << fragmentA) | (1 << fragmentB), array);
+        }
+
+        private Node withSlot(Node node, int index, Object value) {
+            if (node.owner == owner) {
+                node.array[index] = value;
+                return node;
+            }
+            Object[] array = node.array.clone();
+            array[index] = value;
+            return node.collision ? collisionNode(node.hash, array) : bitmapNode(node.bitmap, array);
+        }
+
+        private Node withInserted(Node node, int bit, int index, Object value) {
+            Object[] array = new Object[node.array.length + 1];
+            System.arraycopy(node.array, 0, array, 0, index);
+            array[index] = value;
+            System.arraycopy(node.array, index, array, index + 1, node.array.length - index);
+            if (node.owner == owner) {
+                node.bitmap |= bit;
+                node.array = array;
+                return node;
+            }
+            return node.collision ? collisionNode(node.hash, array) : bitmapNode(node.bitmap | bit, array);
+        }
+    }
+
+    private static int bit(int hash, int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> Entry<K, V> find(Node node, Object key) {
+        int hash = Objects.hashCode(key);
+        for (int shift = 0; node != null; shift += BITS) {
+            if (node.collision) {
+                for (Object o : node.array) {
+                    Entry<K, V> entry = (Entry<K, V>) o;
+                    if (entry.hash == hash && Objects.equals(entry.getKey(), key))
+                        return entry;
+                }
+                return null;
+            }
+            int bit = bit(hash, shift);
+            if ((node.bitmap & bit) == 0)
+                return null;
+            Object child = node.array[Integer.bitCount(node.bitmap & (bit - 1))];
+            if (child instanceof Entry) {
+                Entry<K, V> entry = (Entry<K, V>) child;
+                return entry.hash == hash && Objects.equals(entry.getKey(), key) ? entry : null;
+            }
+            node = (Node) child;
+        }
+        return null;
+    }
+
+    private static final class Entry<K, V> extends AbstractMap.SimpleImmutableEntry<K, V> {
+        private final int hash;
+
+        Entry(K key, V value) {
+            super(key, value);
+            this.hash = Objects.hashCode(key);
+        }
+    }
+
+    /**
+     * Bitmap node holds entries and child nodes ordered by 5 bits of hash at its level, collision node
+     * holds entries with the same full hash.
+     */
+    private static final class Node {
+        private final Object owner;
+        private final boolean collision;
+        private final int hash; // of collision node
+        private int bitmap; // of bitmap node
+        private Object[] array;
+
+        Node(Object owner, boolean collision, int hash, int bitmap, Object[] array) {
+            this.owner = owner;
+            this.collision = collision;
+            this.hash = hash;
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+    }
+
+    private final class MapView extends AbstractMap<K, V> {
+
+        @Override
+        public boolean containsKey(Object key) {
+            return PersistentHashTrie.this.containsKey(key);
+        }
+
+        @Override
+        public V get(Object key) {
+            return PersistentHashTrie.this.get(key);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Set<Map.Entry<K, V>> entrySet() {
+            return new AbstractSet<Map.Entry<K, V>>() {
+                @Override
+                public Iterator<Map.Entry<K, V>> iterator() {
+                    return new EntryIterator<>(root);
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
+    }
+
+    private static final class EntryIterator<K, V> implements Iterator<Map.Entry<K, V>> {
+
+        private final Object[][] arrays = new Object[MAX_DEPTH][];
+        private final int[] positions = new int[MAX_DEPTH];
+        private int depth = -1;
+        private Entry<K, V> next;
+
+        EntryIterator(Node root) {
+            if (root != null)
+                push(root);
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if (next == null)
+                throw new NoSuchElementException();
+            Entry<K, V> result = next;
+            advance();
+            return result;
+        }
+
+        private void push(Node node) {
+            depth++;
+            arrays[depth] = node.array;
+            positions[depth] = 0;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void advance() {
+            next = null;
+            while (depth >= 0) {
+                if (positions[depth] == arrays[depth].length) {
+                    depth--;
+                    continue;
+                }
+                Object o = arrays[depth][positions[depth]++];
+                if (o instanceof Entry) {
+                    next = (Entry<K, V>) o;
+                    return;
+                }
+                push((Node) o);
+            }
+        }
+    }
+}
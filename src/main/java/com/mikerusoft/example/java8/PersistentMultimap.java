@@ -0,0 +1,36 @@
+package com.mikerusoft.example.java8;
+
+import com.google.common.collect.Multimap;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read-only {@link Multimap} view over a version of {@link PersistentHashTrie}, which keeps values
+ * of every key in an {@link AppendOnlyList}. See {@link CollectorSession}
+ */
+final class PersistentMultimap<K, V> extends AbstractReadOnlyMultimap<K, V> {
+
+    private final Map<K, Collection<V>> asMap;
+
+    PersistentMultimap(PersistentHashTrie<K, AppendOnlyList<V>> trie) {
+        this.asMap = Collections.unmodifiableMap(trie.asMap());
+    }
+
+    @Override
+    public Map<K, Collection<V>> asMap() {
+        return asMap;
+    }
+
+    static <K, V> void put(PersistentHashTrie.Editor<K, AppendOnlyList<V>> editor, K key, V value) {
+        AppendOnlyList<V> values = editor.get(key);
+        editor.put(key, (values == null ? AppendOnlyList.<V>of() : values).append(value));
+    }
+
+    static <K, V> void putAll(PersistentHashTrie.Editor<K, AppendOnlyList<V>> editor, K key, List<? extends V> added) {
+        AppendOnlyList<V> values = editor.get(key);
+        editor.put(key, (values == null ? AppendOnlyList.<V>of() : values).appendAll(added));
+    }
+}
@@ -0,0 +1,68 @@
+package com.mikerusoft.example.java8;
+
+import com.google.common.collect.Iterators;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Read-only {@link Map} view over disjoint shards, where every key lives in the shard
+ * chosen by {@link #shardIndex(Object, int)}. Null values (and a null key) are allowed.
+ * See {@link com.mikerusoft.example.java8.Collectors#toShardedMapWithNullValues(java.util.function.Function, java.util.function.Function, int)}
+ */
+final class ShardedMap<K, V> extends AbstractMap<K, V> {
+
+    static int shardIndex(Object key, int shards) {
+        int h = key == null ? 0 : key.hashCode();
+        return Math.floorMod(h ^ (h >>> 16), shards);
+    }
+
+    private final List<Map<K, V>> shards;
+
+    ShardedMap(List<? extends Map<K, V>> shards) {
+        this.shards = shards.stream().map(Collections::unmodifiableMap).collect(Collectors.toList());
+    }
+
+    private Map<K, V> shardFor(Object key) {
+        return shards.get(shardIndex(key, shards.size()));
+    }
+
+    @Override
+    public V get(Object key) {
+        return shardFor(key).get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return shardFor(key).containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (Map<K, V> shard : shards)
+            size += shard.size();
+        return size;
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new AbstractSet<Entry<K, V>>() {
+            @Override
+            public Iterator<Entry<K, V>> iterator() {
+                return Iterators.concat(Iterators.transform(shards.iterator(), s -> s.entrySet().iterator()));
+            }
+
+            @Override
+            public int size() {
+                return ShardedMap.this.size();
+            }
+        };
+    }
+}
@@ -0,0 +1,82 @@
+package com.mikerusoft.example.java8;
+
+import com.google.common.collect.Iterators;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Multimaps;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Read-only {@link Multimap} view over disjoint shards, where every key lives in the shard
+ * chosen by {@link ShardedMap#shardIndex(Object, int)}.
+ * See {@link com.mikerusoft.example.java8.Collectors#toShardedMultimap(java.util.function.Function, java.util.function.Function, int)}
+ */
+final class ShardedMultimap<K, V> extends AbstractReadOnlyMultimap<K, V> {
+
+    private final List<Multimap<K, V>> shards;
+    private final Map<K, Collection<V>> asMap = new AsMap();
+
+    ShardedMultimap(List<? extends ListMultimap<K, V>> shards) {
+        this.shards = shards.stream().map(Multimaps::unmodifiableListMultimap).collect(Collectors.toList());
+    }
+
+    private Multimap<K, V> shardFor(Object key) {
+        return shards.get(ShardedMap.shardIndex(key, shards.size()));
+    }
+
+    @Override
+    public Map<K, Collection<V>> asMap() {
+        return asMap;
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (Multimap<K, V> shard : shards)
+            size += shard.size();
+        return size;
+    }
+
+    private class AsMap extends AbstractMap<K, Collection<V>> {
+        @Override
+        public Collection<V> get(Object key) {
+            return shardFor(key).asMap().get(key);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return shardFor(key).containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            int size = 0;
+            for (Multimap<K, V> shard : shards)
+                size += shard.keySet().size();
+            return size;
+        }
+
+        @Override
+        public Set<Entry<K, Collection<V>>> entrySet() {
+            return new AbstractSet<Entry<K, Collection<V>>>() {
+                @Override
+                public Iterator<Entry<K, Collection<V>>> iterator() {
+                    return Iterators.concat(Iterators.transform(shards.iterator(), s -> s.asMap().entrySet().iterator()));
+                }
+
+                @Override
+                public int size() {
+                    return AsMap.this.size();
+                }
+            };
+        }
+    }
+}
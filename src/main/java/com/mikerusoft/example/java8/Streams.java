@@ -1,6 +1,20 @@
 package com.mikerusoft.example.java8;
 
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Function;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
@@ -9,4 +23,182 @@ public class Streams {
         Iterable<T> iterable = () -> iterator;
         return StreamSupport.stream(iterable.spliterator(), false);
     }
+
+    /**
+     * Lazily applies blocking {@code mapper} to the elements of {@code stream} on {@code executor}, with at most
+     * {@code maxInFlight} calls running at the same time. Results are emitted in completion order.
+     * Failure of any call is rethrown as {@link java.util.concurrent.CompletionException} when its result is reached,
+     * and all other calls in flight are cancelled.
+     * <p>
+     * The returned stream should be closed (e.g. try-with-resources), if it isn't consumed completely
+     * ({@code limit}, {@code findFirst}, etc.): closing cancels calls in flight (interrupting the running ones)
+     * and discards results, which were completed, but not consumed yet.
+     */
+    public static <T, R> Stream<R> mapAsync(Stream<T> stream, Function<? super T, ? extends R> mapper, int maxInFlight, Executor executor) {
+        return async(stream, supplyAsync(mapper, executor), maxInFlight, false);
+    }
+
+    /**
+     * Same as {@link #mapAsync(Stream, Function, int, Executor)}, but calls run on virtual threads, if the runtime
+     * supports them (java 21+), else on shared pool of daemon threads.
+     */
+    public static <T, R> Stream<R> mapAsync(Stream<T> stream, Function<? super T, ? extends R> mapper, int maxInFlight) {
+        return mapAsync(stream, mapper, maxInFlight, IoExecutorHolder.EXECUTOR);
+    }
+
+    /**
+     * Same as {@link #mapAsync(Stream, Function, int, Executor)}, but results are emitted in input order
+     */
+    public static <T, R> Stream<R> mapAsyncOrdered(Stream<T> stream, Function<? super T, ? extends R> mapper, int maxInFlight, Executor executor) {
+        return async(stream, supplyAsync(mapper, executor), maxInFlight, true);
+    }
+
+    /**
+     * Same as {@link #mapAsync(Stream, Function, int)}, but results are emitted in input order
+     */
+    public static <T, R> Stream<R> mapAsyncOrdered(Stream<T> stream, Function<? super T, ? extends R> mapper, int maxInFlight) {
+        return mapAsyncOrdered(stream, mapper, maxInFlight, IoExecutorHolder.EXECUTOR);
+    }
+
+    /**
+     * Same as {@link #mapAsync(Stream, Function, int, Executor)}, but for {@code mapper} which is asynchronous itself.
+     * Stages returned by {@code mapper} belong to the caller and may be shared, so they are never cancelled:
+     * closing the stream or failure of another call only stops waiting for them.
+     */
+    public static <T, R> Stream<R> composeAsync(Stream<T> stream, Function<? super T, ? extends CompletionStage<R>> mapper, int maxInFlight) {
+        return async(stream, dependent(mapper), maxInFlight, false);
+    }
+
+    /**
+     * Same as {@link #composeAsync(Stream, Function, int)}, but results are emitted in input order
+     */
+    public static <T, R> Stream<R> composeAsyncOrdered(Stream<T> stream, Function<? super T, ? extends CompletionStage<R>> mapper, int maxInFlight) {
+        return async(stream, dependent(mapper), maxInFlight, true);
+    }
+
+    /**
+     * Wraps every stage returned by {@code mapper} into a dependent one, so cancelling doesn't reach caller's stage
+     */
+    private static <T, R> Function<T, CompletionStage<R>> dependent(Function<? super T, ? extends CompletionStage<R>> mapper) {
+        return t -> mapper.apply(t).thenApply(Function.identity());
+    }
+
+    /**
+     * In contrast to {@link CompletableFuture#supplyAsync(java.util.function.Supplier, Executor)} cancelling the returned future
+     * interrupts the running call or prevents the pending one from running.
+     */
+    private static <T, R> Function<T, CompletionStage<R>> supplyAsync(Function<? super T, ? extends R> mapper, Executor executor) {
+        return t -> {
+            CompletableFuture<R> result = new CompletableFuture<>();
+            FutureTask<Void> task = new FutureTask<>(() -> {
+                try {
+                    result.complete(mapper.apply(t));
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            }, null);
+            result.whenComplete((r, e) -> {
+                if (result.isCancelled())
+                    task.cancel(true);
+            });
+            executor.execute(task);
+            return result;
+        };
+    }
+
+    private static <T, R> Stream<R> async(Stream<T> stream, Function<? super T, ? extends CompletionStage<R>> mapper, int maxInFlight, boolean ordered) {
+        if (maxInFlight < 1)
+            throw new IllegalArgumentException("Max in flight should be positive, but was " + maxInFlight);
+        AsyncIterator<T, R> iterator = new AsyncIterator<>(stream.iterator(), mapper, maxInFlight, ordered);
+        return of(iterator).onClose(iterator::cancel).onClose(stream::close);
+    }
+
+    private static class AsyncIterator<T, R> implements Iterator<R> {
+
+        private final Iterator<T> source;
+        private final Function<? super T, ? extends CompletionStage<R>> mapper;
+        private final int maxInFlight;
+        private final boolean ordered;
+
+        // ordered: futures in submission order, unordered: futures in completion order
+        private final Queue<CompletableFuture<R>> results;
+        // all submitted futures, which results weren't consumed yet
+        private final Set<CompletableFuture<R>> submitted = Collections.newSetFromMap(new IdentityHashMap<>());
+        private int inFlight;
+        private boolean cancelled;
+
+        AsyncIterator(Iterator<T> source, Function<? super T, ? extends CompletionStage<R>> mapper, int maxInFlight, boolean ordered) {
+            this.source = source;
+            this.mapper = mapper;
+            this.maxInFlight = maxInFlight;
+            this.ordered = ordered;
+            this.results = ordered ? new ArrayDeque<>() : new LinkedBlockingQueue<>();
+        }
+
+        private void fill() {
+            while (!cancelled && inFlight < maxInFlight && source.hasNext()) {
+                CompletableFuture<R> future = mapper.apply(source.next()).toCompletableFuture();
+                submitted.add(future);
+                inFlight++;
+                if (ordered)
+                    results.add(future);
+                else
+                    future.whenComplete((r, e) -> results.add(future));
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            fill();
+            return inFlight > 0;
+        }
+
+        @Override
+        public R next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            CompletableFuture<R> future = ordered ? results.poll() : take();
+            inFlight--;
+            submitted.remove(future);
+            try {
+                return future.join();
+            } catch (RuntimeException e) {
+                cancel();
+                throw e;
+            }
+        }
+
+        void cancel() {
+            cancelled = true;
+            submitted.forEach(future -> future.cancel(true));
+            submitted.clear();
+            results.clear();
+            inFlight = 0;
+        }
+
+        private CompletableFuture<R> take() {
+            try {
+                return ((BlockingQueue<CompletableFuture<R>>) results).take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for async result", e);
+            }
+        }
+    }
+
+    private static class IoExecutorHolder {
+        private static final Executor EXECUTOR = create();
+
+        private static Executor create() {
+            try {
+                return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                return Executors.newCachedThreadPool(r -> {
+                    Thread thread = new Thread(r, "streams-async");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+        }
+    }
 }
@@ -0,0 +1,239 @@
+package com.mikerusoft.example.java8;
+
+import com.google.common.collect.Multimap;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CollectorSessionTest {
+
+    @Test
+    public void whenBatchesAccepted_expectedSnapshotNotAffectedByFollowingBatches() {
+        CollectorSession<String, Multimap<Integer, String>> session =
+                CollectorSession.open(Collectors.toMultimap(String::length, Function.identity()));
+
+        Multimap<Integer, String> first = session.accept(Arrays.asList("a", "bb")).snapshot();
+        Multimap<Integer, String> second = session.accept(Arrays.asList("c", "dd", "eee")).snapshot();
+
+        assertThat(first.size()).isEqualTo(2);
+        assertThat(first.get(1)).containsExactly("a");
+        assertThat(second.size()).isEqualTo(5);
+        assertThat(second.get(1)).containsExactly("a", "c");
+        assertThat(second.get(3)).containsExactly("eee");
+    }
+
+    @Test
+    public void whenShardedBatchesAccepted_expectedSnapshotNotAffectedByFollowingBatches() {
+        CollectorSession<String, Multimap<Integer, String>> session =
+                CollectorSession.open(Collectors.toShardedMultimap(String::length, Function.identity(), 4));
+
+        Multimap<Integer, String> first = session.accept(Arrays.asList("a", "bb")).snapshot();
+        Multimap<Integer, String> second = session.accept(Arrays.asList("c", "dd")).snapshot();
+
+        assertThat(first.get(1)).containsExactly("a");
+        assertThat(second.get(1)).containsExactly("a", "c");
+        assertThat(second.get(2)).containsExactly("bb", "dd");
+    }
+
+    @Test
+    public void whenShardedMapWithNullValuesBatchesAccepted_expectedDuplicateAcrossBatchesRejected() {
+        CollectorSession<Integer, Map<Integer, Integer>> session =
+                CollectorSession.open(Collectors.toShardedMapWithNullValues(Function.identity(), x -> x % 2 == 1 ? x : null, 4));
+
+        Map<Integer, Integer> snapshot = session.accept(Arrays.asList(1, 2)).snapshot();
+
+        assertThat(snapshot).hasSize(2).containsEntry(1, 1).containsEntry(2, null);
+        assertThatThrownBy(() -> session.accept(Arrays.asList(3, 1)))
+                .isExactlyInstanceOf(IllegalStateException.class)
+                .hasMessage("Duplicate key 1");
+        assertThat(session.snapshot()).isEqualTo(snapshot).doesNotContainKey(3);
+    }
+
+    @Test
+    public void whenBatchFails_expectedSessionUnchangedAndUsable() {
+        CollectorSession<Integer, Multimap<Integer, Integer>> session =
+                CollectorSession.open(Collectors.toMultimap(x -> x % 2, x -> {
+                    if (x == 13)
+                        throw new IllegalArgumentException("failed");
+                    return x;
+                }));
+        Multimap<Integer, Integer> before = session.accept(Arrays.asList(1, 2)).snapshot();
+
+        assertThatThrownBy(() -> session.accept(Arrays.asList(11, 12, 13)))
+                .isExactlyInstanceOf(IllegalArgumentException.class);
+        Multimap<Integer, Integer> after = session.accept(Arrays.asList(14, 15)).snapshot();
+
+        assertThat(before.get(0)).containsExactly(2);
+        assertThat(before.get(1)).containsExactly(1);
+        assertThat(after.get(0)).containsExactly(2, 14);
+        assertThat(after.get(1)).containsExactly(1, 15);
+    }
+
+    @Test
+    public void whenMergeFails_expectedSessionUnchanged() {
+        CollectorSession<Integer, Map<Integer, Integer>> left =
+                CollectorSession.open(Collectors.toShardedMapWithNullValues(Function.identity(), Function.identity(), 4));
+        CollectorSession<Integer, Map<Integer, Integer>> right =
+                CollectorSession.open(Collectors.toShardedMapWithNullValues(Function.identity(), Function.identity(), 4));
+        left.accept(Arrays.asList(1, 2));
+        right.accept(IntStream.rangeClosed(2, 100).boxed().collect(java.util.stream.Collectors.toList()));
+
+        assertThatThrownBy(() -> left.merge(right))
+                .isExactlyInstanceOf(IllegalStateException.class)
+                .hasMessage("Duplicate key 2");
+        assertThat(left.snapshot()).containsOnlyKeys(1, 2);
+        assertThat(left.accept(Arrays.asList(3)).snapshot()).containsOnlyKeys(1, 2, 3);
+    }
+
+    @Test
+    public void whenSnapshotModified_expectedUnsupportedOperationException() {
+        CollectorSession<Integer, Multimap<Integer, Integer>> session =
+                CollectorSession.open(Collectors.toMultimap(Function.identity(), Function.identity()));
+        Multimap<Integer, Integer> snapshot = session.accept(Arrays.asList(1, 2)).snapshot();
+
+        assertThatThrownBy(() -> snapshot.put(-1, -1)).isExactlyInstanceOf(UnsupportedOperationException.class);
+        assertThatThrownBy(() -> snapshot.get(1).add(-1)).isExactlyInstanceOf(UnsupportedOperationException.class);
+        assertThat(session.accept(Arrays.asList(3)).snapshot().keySet()).containsOnly(1, 2, 3);
+    }
+
+    @Test
+    public void whenSessionsMerged_expectedBothUsableIndependently() {
+        CollectorSession<String, Set<String>> left = CollectorSession.open(Collectors.<String>toConcurrentSet());
+        CollectorSession<String, Set<String>> right = CollectorSession.open(Collectors.<String>toConcurrentSet());
+        left.accept(Arrays.asList("a", "b"));
+        right.accept(Arrays.asList("b", "c"));
+
+        left.merge(right);
+        right.accept(Arrays.asList("d"));
+        left.accept(Arrays.asList("e"));
+
+        assertThat(left.snapshot()).containsOnly("a", "b", "c", "e");
+        assertThat(right.snapshot()).containsOnly("b", "c", "d");
+        assertThatThrownBy(() -> left.snapshot().add("f")).isExactlyInstanceOf(UnsupportedOperationException.class);
+    }
+
+    @Test
+    public void whenSessionMergedWithItself_expectedIllegalArgumentException() {
+        CollectorSession<String, Set<String>> session = CollectorSession.open(Collectors.<String>toConcurrentSet());
+        assertThatThrownBy(() -> session.merge(session)).isExactlyInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void whenCollectorNotIncremental_expectedIllegalArgumentException() {
+        assertThatThrownBy(() -> CollectorSession.open(Collectors.toFrozenMap(Function.identity(), Function.identity())))
+                .isExactlyInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> CollectorSession.open(java.util.stream.Collectors.toList()))
+                .isExactlyInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void whenLowCardinalityKeysAndBatchLargerThanShardCount_expectedEverySnapshotKeepsItsValues() {
+        CollectorSession<Integer, Multimap<Integer, Integer>> session =
+                CollectorSession.open(Collectors.toShardedMultimap(x -> x % 3, Function.identity(), 4));
+        int batch = 5_000;
+
+        List<Multimap<Integer, Integer>> snapshots = new ArrayList<>();
+        for (int round = 0; round < 10; round++) {
+            int from = round * batch;
+            snapshots.add(session.accept(() -> IntStream.range(from, from + batch).iterator()).snapshot());
+        }
+
+        for (int round = 0; round < snapshots.size(); round++) {
+            Multimap<Integer, Integer> snapshot = snapshots.get(round);
+            int total = (round + 1) * batch;
+            assertThat(snapshot.keySet()).containsOnly(0, 1, 2);
+            assertThat(snapshot.size()).isEqualTo(total);
+            for (int key = 0; key < 3; key++) {
+                int k = key;
+                assertThat(snapshot.get(key)).isEqualTo(
+                        IntStream.range(0, total).filter(x -> x % 3 == k).boxed().collect(java.util.stream.Collectors.toList()));
+            }
+        }
+    }
+
+    @Test
+    public void whenHistoryGrows_expectedRefreshHashesOnlyKeysOfBatch() {
+        CollectorSession<Key, Multimap<Key, Integer>> session =
+                CollectorSession.open(Collectors.toMultimap(Function.identity(), k -> k.id));
+        int batch = 2_000;
+
+        int[] hashesPerRefresh = new int[2];
+        for (int round = 0; round < 2; round++) {
+            int history = (round + 1) * 100_000;
+            session.accept(() -> IntStream.range(0, history).mapToObj(Key::new).iterator());
+            Key.hashes = 0;
+            Multimap<Key, Integer> snapshot = session.accept(() -> IntStream.range(0, batch).mapToObj(Key::new).iterator()).snapshot();
+            hashesPerRefresh[round] = Key.hashes;
+
+            assertThat(snapshot.keySet()).hasSize(history);
+            assertThat(snapshot.get(new Key(1))).hasSize(round == 0 ? 2 : 4);
+        }
+
+        assertThat(hashesPerRefresh[0]).isBetween(batch, 2 * batch);
+        assertThat(hashesPerRefresh[1]).isEqualTo(hashesPerRefresh[0]);
+    }
+
+    @Test
+    public void whenKeysCollide_expectedAllKeysKept() {
+        List<Object> elements = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++)
+            elements.add(new CollidingKey(i));
+        elements.add(null);
+
+        CollectorSession<Object, Set<Object>> session = CollectorSession.open(Collectors.<Object>toConcurrentSet());
+        Set<Object> first = session.accept(elements.subList(0, 500)).snapshot();
+        Set<Object> all = session.accept(elements.subList(500, 1_001)).snapshot();
+
+        assertThat(first).hasSize(500).containsAll(elements.subList(0, 500)).doesNotContain(elements.get(500));
+        assertThat(all).hasSize(1_001).containsAll(elements);
+        assertThat(new ArrayList<>(all)).containsOnlyElementsOf(elements);
+    }
+
+    private static final class Key {
+        private static int hashes;
+        private final int id;
+
+        Key(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && ((Key) o).id == id;
+        }
+
+        @Override
+        public int hashCode() {
+            hashes++;
+            return Integer.hashCode(id);
+        }
+    }
+
+    private static final class CollidingKey {
+        private final int id;
+
+        CollidingKey(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof CollidingKey && ((CollidingKey) o).id == id;
+        }
+
+        @Override
+        public int hashCode() {
+            // many keys share the full hash, others share only lower bits
+            return id % 7 == 0 ? 42 : (id % 13) << 25;
+        }
+    }
+}
@@ -5,10 +5,21 @@ import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.Getter;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -121,4 +132,254 @@ public class CollectorsTest {
         assertThat(collect).isNotNull();
         assertThat(collect.asMap()).isNotNull().hasSize(0);
     }
+
+    @Test
+    public void whenShardedMultimapParallel_expectedSameGroupsAsMultimap() {
+        Multimap<Integer, Integer> expected = IntStream.range(0, 10_000).boxed()
+                .collect(Collectors.toMultimap(x -> x % 100, Function.identity()));
+
+        Multimap<Integer, Integer> collect = IntStream.range(0, 10_000).boxed()
+                .parallel()
+                .collect(Collectors.toShardedMultimap(x -> x % 100, Function.identity(), 8));
+
+        assertThat(collect.size()).isEqualTo(10_000);
+        assertThat(collect.keySet()).hasSize(100);
+        assertThat(collect.get(42)).containsExactlyElementsOf(expected.get(42));
+        assertThat(collect.get(1000)).isEmpty();
+        assertThat(collect).isEqualTo(expected);
+        assertThatThrownBy(() -> collect.put(1, 1)).isExactlyInstanceOf(UnsupportedOperationException.class);
+    }
+
+    @Test
+    public void whenEmptyStream_expectedEmptyShardedMultimap() {
+        Multimap<String, String> collect =
+            new ArrayList<Pair<String, String>>().stream()
+                .collect(Collectors.toShardedMultimap(Pair::getLeft, Pair::getRight, 4));
+
+        assertThat(collect.isEmpty()).isTrue();
+        assertThat(collect.get("1")).isEmpty();
+    }
+
+    @Test
+    public void whenShardedMapWithNullValuesParallel_expectedNullValuesPreserved() {
+        Map<Integer, Integer> result = IntStream.range(0, 1_000).boxed()
+                .parallel()
+                .collect(Collectors.toShardedMapWithNullValues(Function.identity(), x -> x % 2 == 1 ? x : null, 4));
+
+        assertThat(result)
+                .hasSize(1_000)
+                .containsEntry(1, 1)
+                .containsEntry(2, null)
+                .containsEntry(999, 999);
+        assertThatThrownBy(() -> result.put(1, 1)).isExactlyInstanceOf(UnsupportedOperationException.class);
+    }
+
+    @Test
+    public void whenShardedMapWithNullValuesDuplicateParallel_expectedIllegalStateException() {
+        assertThatThrownBy(() -> Stream.concat(IntStream.range(0, 1_000).boxed(), Stream.of(500))
+                .parallel()
+                .collect(Collectors.toShardedMapWithNullValues(Function.identity(), Function.identity(), 4)))
+                .isExactlyInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("Duplicate key 500");
+    }
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static final ExternalMultimap.Codec<Integer, String> INT_STRING_CODEC = new ExternalMultimap.Codec<Integer, String>() {
+        @Override
+        public void writeKey(DataOutput out, Integer key) throws IOException { out.writeInt(key); }
+
+        @Override
+        public Integer readKey(DataInput in) throws IOException { return in.readInt(); }
+
+        @Override
+        public void writeValue(DataOutput out, String value) throws IOException { out.writeUTF(value); }
+
+        @Override
+        public String readValue(DataInput in) throws IOException { return in.readUTF(); }
+    };
+
+    @Test
+    public void whenExternalMultimapExceedsBudget_expectedGroupsSortedByKeyAndRunsDeleted() throws Exception {
+        Path dir = tmp.newFolder().toPath();
+        List<ImmutablePair<Integer, List<String>>> groups;
+        try (Stream<ImmutablePair<Integer, List<String>>> stream = IntStream.range(0, 100).boxed()
+                .collect(Collectors.toExternalMultimap(x -> x % 3, String::valueOf, 7, dir, INT_STRING_CODEC))) {
+            assertThat(Files.list(dir).count()).isGreaterThan(1);
+            groups = stream.collect(java.util.stream.Collectors.toList());
+        }
+
+        assertThat(groups).extracting(ImmutablePair::getLeft).containsExactly(0, 1, 2);
+        assertThat(groups.get(1).getRight()).hasSize(33).startsWith("1", "4", "7").endsWith("94", "97");
+        assertThat(Files.list(dir).count()).isZero();
+    }
+
+    @Test
+    public void whenExternalMultimapParallel_expectedValuesInEncounterOrder() throws Exception {
+        Path dir = tmp.newFolder().toPath();
+        try (Stream<ImmutablePair<Integer, List<String>>> stream = IntStream.range(0, 10_000).boxed()
+                .parallel()
+                .collect(Collectors.toExternalMultimap(x -> x % 10, String::valueOf, 100, dir, INT_STRING_CODEC))) {
+            List<ImmutablePair<Integer, List<String>>> groups = stream.collect(java.util.stream.Collectors.toList());
+            assertThat(groups).hasSize(10);
+            List<String> expected = IntStream.range(0, 1_000).mapToObj(i -> String.valueOf(i * 10 + 5))
+                    .collect(java.util.stream.Collectors.toList());
+            assertThat(groups.get(5).getRight()).containsExactlyElementsOf(expected);
+        }
+        assertThat(Files.list(dir).count()).isZero();
+    }
+
+    /**
+     * Counts run streams, which are open at the same time: every stream, which was read from, is open until
+     * {@link DataInputStream#available()} fails
+     */
+    private static class OpenRunsCountingCodec implements ExternalMultimap.Codec<Integer, String> {
+        private final Set<DataInput> open = Collections.newSetFromMap(new IdentityHashMap<>());
+        private int maxOpen;
+
+        @Override
+        public void writeKey(DataOutput out, Integer key) throws IOException { INT_STRING_CODEC.writeKey(out, key); }
+
+        @Override
+        public Integer readKey(DataInput in) throws IOException {
+            open.add(in);
+            open.removeIf(run -> {
+                try {
+                    ((DataInputStream) run).available();
+                    return false;
+                } catch (IOException e) {
+                    return true;
+                }
+            });
+            maxOpen = Math.max(maxOpen, open.size());
+            return INT_STRING_CODEC.readKey(in);
+        }
+
+        @Override
+        public void writeValue(DataOutput out, String value) throws IOException { INT_STRING_CODEC.writeValue(out, value); }
+
+        @Override
+        public String readValue(DataInput in) throws IOException { return INT_STRING_CODEC.readValue(in); }
+    }
+
+    @Test
+    public void whenExternalMultimapHasManyRuns_expectedMergedWithBoundedOpenRuns() throws Exception {
+        Path dir = tmp.newFolder().toPath();
+        OpenRunsCountingCodec codec = new OpenRunsCountingCodec();
+        ExternalMultimap<Integer, String> map = new ExternalMultimap<>(10, dir, codec, 4, new ExternalMultimap.RunRegistry());
+        IntStream.range(0, 20_000).forEach(x -> map.put(x % 100, String.valueOf(x)));
+        assertThat(Files.list(dir).count()).isEqualTo(2_000);
+
+        List<ImmutablePair<Integer, List<String>>> groups;
+        try (Stream<ImmutablePair<Integer, List<String>>> stream = map.stream()) {
+            groups = stream.collect(java.util.stream.Collectors.toList());
+        }
+
+        assertThat(codec.maxOpen).isEqualTo(4);
+        assertThat(groups).hasSize(100);
+        assertThat(groups.get(7).getRight()).hasSize(200).startsWith("7", "107", "207").endsWith("19907");
+        assertThat(Files.list(dir).count()).isZero();
+    }
+
+    @Test
+    public void whenExternalMultimapKeyCreatorFails_expectedRunsDeleted() throws Exception {
+        Path dir = tmp.newFolder().toPath();
+        assertThatThrownBy(() -> IntStream.range(0, 100).boxed()
+                .collect(Collectors.toExternalMultimap(x -> { if (x == 50) throw new IllegalStateException("failed"); return x % 3; },
+                        String::valueOf, 7, dir, INT_STRING_CODEC)))
+                .isExactlyInstanceOf(IllegalStateException.class)
+                .hasMessage("failed");
+
+        assertThat(Files.list(dir).count()).isZero();
+    }
+
+    @Test
+    public void whenExternalMultimapParallelForkFails_expectedRunsOfAllForksDeleted() throws Exception {
+        Path dir = tmp.newFolder().toPath();
+        assertThatThrownBy(() -> IntStream.range(0, 10_000).boxed()
+                .parallel()
+                .collect(Collectors.toExternalMultimap(x -> { if (x == 9_000) throw new IllegalStateException("failed"); return x % 3; },
+                        String::valueOf, 7, dir, INT_STRING_CODEC)))
+                .hasMessageContaining("failed");
+
+        // forks, which were still running, when the collect failed
+        ForkJoinPool.commonPool().awaitQuiescence(5, TimeUnit.SECONDS);
+        assertThat(Files.list(dir).count()).isZero();
+    }
+
+    @Test
+    public void testToFrozenMapWithNullValues() throws Exception {
+        Map<Integer, Integer> result = IntStream.range(0, 1_000).boxed()
+                .collect(Collectors.toFrozenMap(Function.identity(), x -> x % 2 == 1 ? x : null));
+
+        assertThat(result)
+                .hasSize(1_000)
+                .containsEntry(1, 1)
+                .containsEntry(2, null)
+                .containsEntry(999, 999)
+                .doesNotContainKey(1_000);
+        assertThat(result).isEqualTo(IntStream.range(0, 1_000).boxed()
+                .collect(Collectors.toMapWithNullValues(Function.identity(), x -> x % 2 == 1 ? x : null)));
+        assertThatThrownBy(() -> result.put(1, 1)).isExactlyInstanceOf(UnsupportedOperationException.class);
+    }
+
+    @Test
+    public void testToFrozenMapDuplicate() throws Exception {
+        assertThatThrownBy(() -> Stream.of(1, 2, 3, 1)
+                .collect(Collectors.toFrozenMap(Function.identity(), Function.identity())))
+                .isExactlyInstanceOf(IllegalStateException.class)
+                .hasMessage("Duplicate key 1");
+    }
+
+    @Test
+    public void whenFrozenMultimap_expectedSameGroupsAsMultimap() {
+        Multimap<String, String> expected = Stream.of(Pair.of("1", "2"), Pair.of("2", "2"), Pair.of("1", "3"), Pair.of((String) null, "4"))
+                .collect(Collectors.toMultimap(Pair::getLeft, Pair::getRight));
+        Multimap<String, String> collect = Stream.of(Pair.of("1", "2"), Pair.of("2", "2"), Pair.of("1", "3"), Pair.of((String) null, "4"))
+                .collect(Collectors.toFrozenMultimap(Pair::getLeft, Pair::getRight));
+
+        assertThat(collect).isEqualTo(expected);
+        assertThat(collect.size()).isEqualTo(4);
+        assertThat(collect.asMap()).hasSize(3).containsOnlyKeys("1", "2", null);
+        assertThat(collect.get("1")).containsExactly("2", "3");
+        assertThat(collect.get(null)).containsExactly("4");
+        assertThat(collect.get("3")).isEmpty();
+        assertThat(collect.containsEntry("2", "2")).isTrue();
+        assertThatThrownBy(() -> collect.get("1").add("5")).isExactlyInstanceOf(UnsupportedOperationException.class);
+    }
+
+    @Test
+    public void whenInterningMultimap_expectedEqualValuesShareOneInstance() {
+        Multimap<String, String> collect = IntStream.range(0, 1_000).boxed()
+                .parallel()
+                .collect(Collectors.toInterningMultimap(x -> "isbn" + x % 10, x -> new String("author" + x % 3)));
+
+        assertThat(collect.size()).isEqualTo(1_000);
+        Set<String> instances = Collections.newSetFromMap(new IdentityHashMap<>());
+        instances.addAll(collect.values());
+        assertThat(instances).hasSize(3);
+    }
+
+    @Test
+    public void whenInterningMapWithNullValuesBounded_expectedNullValuesPreserved() {
+        Map<Integer, String> result = Stream.of(1, 2, 3)
+                .collect(Collectors.toInterningMapWithNullValues(Function.identity(), x -> x % 2 == 1 ? new String("odd") : null, 10));
+
+        assertThat(result)
+                .hasSize(3)
+                .containsEntry(1, "odd")
+                .containsEntry(2, null)
+                .containsEntry(3, "odd");
+        assertThat(result.get(1)).isSameAs(result.get(3));
+    }
+
+    @Test
+    public void whenInterningDownstream_expectedElementsCanonicalized() {
+        List<String> result = Stream.of("a", "b", "a").map(String::new)
+                .collect(Collectors.interning(java.util.stream.Collectors.toList()));
+
+        assertThat(result).containsExactly("a", "b", "a");
+        assertThat(result.get(0)).isSameAs(result.get(2));
+    }
 }
@@ -2,10 +2,22 @@ package com.mikerusoft.example.java8;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 public class StreamsTest {
 
@@ -22,4 +34,140 @@ public class StreamsTest {
             assertThat(t).isNotNull().isEqualTo("Hello");
         });
     }
-}
\ No newline at end of file
+
+    @Test
+    public void whenMapAsyncOrdered_expectedResultsInInputOrderAndBoundedInFlight() {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Integer> result = Streams.mapAsyncOrdered(IntStream.range(0, 50).boxed(), x -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                sleep((50 - x) % 7);
+                running.decrementAndGet();
+                return x * 2;
+            }, 3, executor).collect(Collectors.toList());
+
+            assertThat(result).containsExactlyElementsOf(IntStream.range(0, 50).map(x -> x * 2).boxed().collect(Collectors.toList()));
+            assertThat(maxRunning.get()).isBetween(1, 3);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void whenMapAsync_expectedAllResultsFirstCompletedFirst() {
+        List<Integer> result = Streams.mapAsync(Stream.of(300, 1, 2), x -> { sleep(x); return x; }, 3)
+                .collect(Collectors.toList());
+
+        assertThat(result).containsExactlyInAnyOrder(300, 1, 2);
+        assertThat(result.get(2)).isEqualTo(300);
+    }
+
+    @Test
+    public void whenComposeAsyncFails_expectedCompletionException() {
+        CompletableFuture<Integer> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new IllegalStateException("failed"));
+
+        assertThatThrownBy(() -> Streams.composeAsyncOrdered(Stream.of(1, 2), x -> x == 2 ? failed : CompletableFuture.completedFuture(x), 2)
+                .collect(Collectors.toList()))
+                .isExactlyInstanceOf(CompletionException.class)
+                .hasCauseExactlyInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void whenComposeAsyncShortCircuitedAndClosed_expectedCallerFuturesNotCancelled() {
+        List<CompletableFuture<Integer>> pending = new ArrayList<>();
+        try (Stream<Integer> stream = Streams.composeAsyncOrdered(Stream.of(1, 2, 3, 4), x -> {
+            CompletableFuture<Integer> future = x == 1 ? CompletableFuture.completedFuture(x) : new CompletableFuture<>();
+            pending.add(future);
+            return future;
+        }, 3)) {
+            assertThat(stream.findFirst()).contains(1);
+        }
+
+        assertThat(pending).hasSize(3);
+        assertThat(pending.subList(1, 3)).allMatch(future -> !future.isDone());
+    }
+
+    @Test
+    public void whenMapAsyncClosed_expectedRunningCallsInterrupted() throws Exception {
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch interrupted = new CountDownLatch(2);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            try (Stream<Integer> stream = Streams.mapAsyncOrdered(Stream.of(1, 2, 3), x -> {
+                if (x == 1)
+                    return x;
+                started.countDown();
+                try {
+                    Thread.sleep(10_000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+                return x;
+            }, 3, executor)) {
+                assertThat(stream.findFirst()).contains(1);
+                assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+            }
+            assertThat(interrupted.await(5, TimeUnit.SECONDS)).isTrue();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void whenComposeAsyncFails_expectedOtherCallerFuturesNotCancelled() {
+        CompletableFuture<Integer> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new IllegalStateException("failed"));
+        CompletableFuture<Integer> pending = new CompletableFuture<>();
+
+        assertThatThrownBy(() -> Streams.composeAsyncOrdered(Stream.of(1, 2), x -> x == 1 ? failed : pending, 2)
+                .collect(Collectors.toList()))
+                .isExactlyInstanceOf(CompletionException.class);
+        assertThat(pending.isDone()).isFalse();
+    }
+
+    @Test
+    public void whenMapAsyncFails_expectedOtherCallsCancelled() throws Exception {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            assertThatThrownBy(() -> Streams.mapAsyncOrdered(Stream.of(1, 2), x -> {
+                if (x == 2) {
+                    started.countDown();
+                    try {
+                        Thread.sleep(10_000);
+                    } catch (InterruptedException e) {
+                        interrupted.countDown();
+                    }
+                    return x;
+                }
+                try {
+                    started.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                throw new IllegalStateException("failed");
+            }, 2, executor).collect(Collectors.toList()))
+                    .isExactlyInstanceOf(CompletionException.class);
+            assertThat(interrupted.await(5, TimeUnit.SECONDS)).isTrue();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void whenMaxInFlightIsZero_expectedIllegalArgumentException() {
+        Streams.composeAsync(Stream.of(1), CompletableFuture::completedFuture, 0);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}